@@ -2,6 +2,10 @@ module org.example.newsapp {
     requires javafx.controls;
     requires java.net.http;
     requires java.xml;
+    requires jdk.jfr;
+    requires com.google.gson;
 
     exports org.example;
+    // Gson сериализует реестр лент через рефлексию
+    opens org.example.service to com.google.gson;
 }
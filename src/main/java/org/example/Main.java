@@ -5,11 +5,12 @@ import javafx.animation.PauseTransition;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
+import javafx.scene.Node;
 import javafx.scene.control.*;
+import javafx.scene.control.skin.VirtualFlow;
 import javafx.scene.input.MouseButton;
 import javafx.scene.input.Clipboard;
 import javafx.scene.input.ClipboardContent;
@@ -18,21 +19,28 @@ import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
 import javafx.scene.text.Text;
+import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import javafx.util.Duration;
+import org.example.diagnostics.FlightRecording;
+import org.example.diagnostics.UiApplyEvent;
 import org.example.service.NewsService;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.io.File;
+import java.nio.file.Path;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class Main extends Application {
+    // Сколько страниц держим в памяти вокруг видимой области
+    private static final int MAX_RESIDENT_PAGES = 5;
+
     private final NewsService service = new NewsService();
-    private final ObservableList<NewsArticle> items = FXCollections.observableArrayList();
-    private final Set<String> seenUrls = new HashSet<>();
+    private final FlightRecording recording = new FlightRecording();
+    private final int pageSize = 20;
+    private final PagedNewsList items = new PagedNewsList(pageSize, MAX_RESIDENT_PAGES);
     private final ExecutorService io = Executors.newFixedThreadPool(4, r -> {
         Thread t = new Thread(r, "news-io");
         t.setDaemon(true);
@@ -40,13 +48,21 @@ public class Main extends Application {
     });
     private final AtomicLong requestId = new AtomicLong();
 
-    private int page = 0;
-    private final int pageSize = 20;
     private boolean loading = false;
     private boolean hasNext = true;
+    // Курсор следующей страницы для догрузки
+    private NewsService.PageCursor nextCursor;
+    private VirtualFlow<?> listFlow;
+    // Средняя высота карточки новости: такой же высоты рисуем строки выгруженных страниц
+    private double avgCardHeight = 0;
     private String currentQuery = "";
     private String currentCategory = "Все"; // Все | Политика | Спорт
 
+    private ComboBox<String> categoryBox;
+    private boolean updatingCategories = false;
+    private boolean updatingJfrToggle = false;
+    // Подсказка о новых новостях уже показана; до следующего сброса списка не повторяем
+    private boolean newsPending = false;
     private Button loadMoreBtn;
     private ProgressIndicator progress;
     private Label statusLabel;
@@ -57,9 +73,10 @@ public class Main extends Application {
         searchField.setPromptText("Поиск новостей...");
         Button searchBtn = new Button("Искать");
         Button refreshBtn = new Button("Обновить");
-        ComboBox<String> categoryBox = new ComboBox<>(FXCollections.observableArrayList(
-            "Все", "Политика", "Спорт", "Технологии", "Наука", "Бизнес", "Здоровье"));
-        categoryBox.getSelectionModel().select("Все");
+        Button importBtn = new Button("Импорт OPML");
+        // Категории берём из реестра лент: встроенные и пользовательские из OPML
+        categoryBox = new ComboBox<>(FXCollections.observableArrayList());
+        refreshCategories();
         categoryBox.setPrefWidth(140);
         CheckBox darkToggle = new CheckBox("Тёмная тема");
 
@@ -70,7 +87,7 @@ public class Main extends Application {
         headerBox.setAlignment(Pos.CENTER);
         headerBox.getStyleClass().add("header-box");
 
-        HBox top = new HBox(8, categoryBox, searchField, searchBtn, refreshBtn, darkToggle);
+        HBox top = new HBox(8, categoryBox, searchField, searchBtn, refreshBtn, importBtn, darkToggle);
         top.setAlignment(Pos.CENTER_LEFT);
         top.setPadding(new Insets(10));
         HBox.setHgrow(searchField, Priority.ALWAYS);
@@ -79,6 +96,7 @@ public class Main extends Application {
         // Стили через CSS классы
         searchBtn.getStyleClass().addAll("btn", "btn-primary");
         refreshBtn.getStyleClass().addAll("btn", "btn-secondary");
+        importBtn.getStyleClass().addAll("btn", "btn-secondary");
 
         ListView<NewsArticle> listView = new ListView<>(items);
         // Улучшенный плейсхолдер
@@ -98,9 +116,30 @@ public class Main extends Application {
         listView.setPlaceholder(placeholder);
 
         listView.setCellFactory(v -> new ListCell<>() {
+            {
+                // Замеряем только настоящие карточки, заглушки в среднее не попадают
+                heightProperty().addListener((obs, was, h) -> {
+                    if (!isEmpty() && getItem() != null && h.doubleValue() > 0) recordCardHeight(h.doubleValue());
+                });
+            }
+
             @Override
             protected void updateItem(NewsArticle a, boolean empty) {
                 super.updateItem(a, empty);
+                if (!empty && a == null) {
+                    // Страница выгружена из памяти и сейчас подгружается заново. Строка той же высоты,
+                    // что и карточка, иначе при возврате к ней прыгают ползунок и содержимое
+                    double h = avgCardHeight > 0 ? avgCardHeight : USE_COMPUTED_SIZE;
+                    setMinHeight(h);
+                    setPrefHeight(h);
+                    setText("Загрузка...");
+                    setGraphic(null);
+                    setStyle("-fx-padding: 6 12 6 12;");
+                    setContextMenu(null);
+                    return;
+                }
+                setMinHeight(USE_COMPUTED_SIZE);
+                setPrefHeight(USE_COMPUTED_SIZE);
                 if (empty || a == null) {
                     setText(null);
                     setGraphic(null);
@@ -123,6 +162,7 @@ public class Main extends Application {
                 VBox card = new VBox(2, t, m, d);
                 card.setPadding(new Insets(10));
                 card.getStyleClass().add("card");
+                setText(null);
                 setGraphic(card);
                 setStyle("-fx-padding: 6 12 6 12;");
 
@@ -142,11 +182,6 @@ public class Main extends Application {
                 } else {
                     setContextMenu(null);
                 }
-
-                // Автодогрузка при прокрутке к концу
-                if (getIndex() >= Main.this.items.size() - 5 && Main.this.hasNext && !Main.this.loading) {
-                    Main.this.loadPage(false);
-                }
             }
         });
         listView.setOnMouseClicked(e -> {
@@ -158,6 +193,8 @@ public class Main extends Application {
             }
         });
 
+        items.setPageLoader(this::reloadPage);
+
         loadMoreBtn = new Button("Загрузить ещё");
         loadMoreBtn.setOnAction(e -> loadPage(false));
         loadMoreBtn.getStyleClass().addAll("btn", "btn-success");
@@ -178,7 +215,44 @@ public class Main extends Application {
         statusLabel.getStyleClass().add("status-label");
         HBox spacer = new HBox();
         HBox.setHgrow(spacer, Priority.ALWAYS);
-        HBox statusBar = new HBox(12, statusLabel, spacer, progress);
+        // JFR: кольцевая запись и сброс в файл по кнопке
+        CheckBox jfrToggle = new CheckBox("JFR-запись");
+        Button jfrDumpBtn = new Button("Сохранить JFR");
+        jfrDumpBtn.getStyleClass().addAll("btn", "btn-secondary");
+        jfrDumpBtn.setDisable(true);
+        boolean jfrAvailable = FlightRecording.isAvailable();
+        jfrToggle.setDisable(!jfrAvailable);
+        jfrToggle.selectedProperty().addListener((obs, was, isNow) -> {
+            if (updatingJfrToggle) return;
+            try {
+                if (isNow) {
+                    recording.start();
+                    showStatus("JFR-запись запущена");
+                } else {
+                    recording.stop();
+                    showStatus("JFR-запись остановлена");
+                }
+            } catch (Exception ex) {
+                showError((isNow ? "Не удалось запустить JFR: " : "Не удалось остановить JFR: ") + ex.getMessage());
+                // Возвращаем флажок к фактическому состоянию записи, не вызывая обработчик повторно
+                updatingJfrToggle = true;
+                try {
+                    jfrToggle.setSelected(recording.isRunning());
+                } finally {
+                    updatingJfrToggle = false;
+                }
+            }
+            jfrDumpBtn.setDisable(!recording.isRunning());
+        });
+        jfrDumpBtn.setOnAction(e -> {
+            try {
+                Path file = recording.dump(Path.of(System.getProperty("user.home"), "newsapp-jfr"));
+                showStatus("JFR сохранён: " + file);
+            } catch (Exception ex) {
+                showError("Не удалось сохранить JFR: " + ex.getMessage());
+            }
+        });
+        HBox statusBar = new HBox(12, statusLabel, spacer, jfrToggle, jfrDumpBtn, progress);
         statusBar.getStyleClass().add("status-bar");
         statusBar.setAlignment(Pos.CENTER_LEFT);
         statusBar.setPadding(new Insets(8, 16, 8, 16));
@@ -189,6 +263,9 @@ public class Main extends Application {
         if (cssUrl != null) {
             scene.getStylesheets().add(cssUrl.toExternalForm());
         }
+        // Окно страниц и автодогрузку ведём по реально видимым строкам: ListView читает
+        // элементы и для невидимых строк (замер высоты, выделение), так что get() тут не помощник
+        scene.addPostLayoutPulseListener(() -> updateViewport(listView));
         stage.setScene(scene);
         stage.setTitle("NewsApp");
         stage.show();
@@ -219,10 +296,44 @@ public class Main extends Application {
         refreshBtn.setOnAction(e -> loadPage(true));
 
         categoryBox.valueProperty().addListener((obs, oldV, newV) -> {
+            if (updatingCategories) return;
             currentCategory = newV == null ? "Все" : newV;
             loadPage(true);
         });
 
+        importBtn.setOnAction(e -> {
+            FileChooser chooser = new FileChooser();
+            chooser.setTitle("Импорт подписок");
+            chooser.getExtensionFilters().addAll(
+                    new FileChooser.ExtensionFilter("OPML", "*.opml", "*.xml"),
+                    new FileChooser.ExtensionFilter("Все файлы", "*.*"));
+            File file = chooser.showOpenDialog(stage);
+            if (file != null) importOpml(file.toPath());
+        });
+
+        // Волна фонового обновления принесла новости: пустой список перезагружаем сразу,
+        // иначе не сбиваем прокрутку и только подсказываем
+        service.setOnFeedsUpdated(() -> Platform.runLater(() -> {
+            if (items.size() == 0 && !loading) {
+                loadPage(true);
+            } else if (!newsPending) {
+                newsPending = true;
+                showStatus("Есть новые новости — нажмите «Обновить»");
+            }
+        }));
+        service.start();
+
+        // -Dnewsapp.opml=путь — импорт подписок при запуске
+        String opml = System.getProperty("newsapp.opml");
+        if (opml != null && !opml.isBlank()) {
+            importOpml(Path.of(opml));
+        }
+
+        // -Dnewsapp.jfr=true — запись с самого запуска
+        if (jfrAvailable && Boolean.getBoolean("newsapp.jfr")) {
+            jfrToggle.setSelected(true);
+        }
+
         loadPage(true);
     }
 
@@ -233,10 +344,10 @@ public class Main extends Application {
         loadMoreBtn.setDisable(true);
 
         if (reset) {
-            page = 0;
             hasNext = true;
+            nextCursor = null;
+            newsPending = false;
             items.clear();
-            seenUrls.clear();
         }
         if (!hasNext) {
             progress.setVisible(false);
@@ -247,29 +358,42 @@ public class Main extends Application {
 
         long id = requestId.incrementAndGet();
 
-        int pageToLoad = page;
+        int pageToLoad = items.pageCount();
+        String category = currentCategory;
+        String query = currentQuery;
+        NewsService.PageCursor cursor = nextCursor;
         CompletableFuture
-                .supplyAsync(() -> service.fetchPage(currentCategory, currentQuery, pageToLoad, pageSize), io)
+                .supplyAsync(() -> {
+                    if (cursor != null) return service.fetchPage(cursor, pageSize);
+                    // При сбросе собираем выборку заново, если ленты успели обновиться
+                    if (reset) service.dropStaleSnapshots();
+                    return service.fetchPage(category, query, pageSize);
+                }, io)
                 .whenComplete((result, error) -> Platform.runLater(() -> {
                     if (id != requestId.get()) {
                         progress.setVisible(false);
                         loading = false;
                         return;
                     }
+                    // Событие начинаем после проверки ошибки: диалог ошибки — не работа UI
+                    UiApplyEvent applyEvent = null;
+                    boolean restart = false;
                     try {
                         if (error != null) {
                             showError("Ошибка загрузки: " + error.getMessage());
                             hasNext = true; // позволяем повторить попытку
                             return;
                         }
-                        int before = items.size();
-                        result.articles().forEach(a -> {
-                            String url = a.getUrl();
-                            if (url != null && !url.isBlank() && seenUrls.add(url)) {
-                                items.add(a);
-                            }
-                        });
-                        int added = items.size() - before;
+                        applyEvent = new UiApplyEvent();
+                        applyEvent.begin();
+                        // Дубликаты и статьи без ссылки отсекает сервис; если страница
+                        // всё же повторяет показанное — выборка сместилась, начинаем заново
+                        if (!items.appendPage(result.articles(), result.cursor())) {
+                            restart = true;
+                            return;
+                        }
+                        nextCursor = result.next();
+                        int added = result.articles().size();
                         if (added > 0) {
                             showStatus("Добавлено " + added + " новостей");
                         } else if (!result.hasNext()) {
@@ -278,19 +402,127 @@ public class Main extends Application {
                         hasNext = result.hasNext();
                         if (result.articles().isEmpty()) {
                             hasNext = false;
-                        } else {
-                            page++;
                         }
                     } finally {
                         progress.setVisible(false);
                         loadMoreBtn.setDisable(!hasNext);
                         loading = false;
+                        if (applyEvent != null) {
+                            // id категории, как в PageMergeEvent, а не подпись из UI
+                            applyEvent.category = result.category();
+                            applyEvent.queryLength = query.length();
+                            applyEvent.page = pageToLoad;
+                            applyEvent.itemCount = result.articles().size();
+                            applyEvent.commit();
+                        }
+                        if (restart) {
+                            showStatus("Ленты обновились — список загружен заново");
+                            loadPage(true);
+                        }
+                    }
+                }));
+    }
+
+    private void importOpml(Path file) {
+        progress.setVisible(true);
+        CompletableFuture
+                .supplyAsync(() -> {
+                    try {
+                        return service.importOpml(file);
+                    } catch (Exception ex) {
+                        throw new RuntimeException(ex.getMessage(), ex);
+                    }
+                }, io)
+                .whenComplete((added, error) -> Platform.runLater(() -> {
+                    progress.setVisible(loading);
+                    if (error != null) {
+                        Throwable cause = error.getCause() != null ? error.getCause() : error;
+                        showError("Ошибка импорта OPML: " + cause.getMessage());
+                        return;
+                    }
+                    refreshCategories();
+                    showStatus("Добавлено лент: " + added + " (всего " + service.feedCount() + ")");
+                    loadPage(true);
+                }));
+    }
+
+    // Пересобирает список категорий, сохраняя выбор, если категория ещё есть
+    private void refreshCategories() {
+        String selected = categoryBox.getValue() == null ? "Все" : categoryBox.getValue();
+        updatingCategories = true;
+        try {
+            categoryBox.getItems().setAll("Все");
+            categoryBox.getItems().addAll(service.categoryLabels());
+            if (!categoryBox.getItems().contains(selected)) selected = "Все";
+            categoryBox.getSelectionModel().select(selected);
+        } finally {
+            updatingCategories = false;
+        }
+        currentCategory = selected;
+    }
+
+    // Скользящее среднее: высота карточек меняется с шириной окна и длиной описания
+    private void recordCardHeight(double height) {
+        avgCardHeight = avgCardHeight == 0 ? height : avgCardHeight * 0.9 + height * 0.1;
+    }
+
+    // Сообщает модели видимый диапазон строк и догружает следующую страницу у конца списка
+    private void updateViewport(ListView<NewsArticle> listView) {
+        if (listFlow == null) {
+            Node n = listView.lookup(".virtual-flow");
+            if (!(n instanceof VirtualFlow<?> flow)) return;
+            listFlow = flow;
+        }
+        IndexedCell<?> first = listFlow.getFirstVisibleCell();
+        IndexedCell<?> last = listFlow.getLastVisibleCell();
+        if (first == null || last == null || first.getIndex() < 0 || items.size() == 0) return;
+        items.setViewport(first.getIndex(), last.getIndex());
+
+        // Автодогрузка при прокрутке к концу
+        if (last.getIndex() >= items.size() - 5 && hasNext && !loading) {
+            Platform.runLater(() -> loadPage(false));
+        }
+    }
+
+    // Повторная загрузка страницы, выгруженной из окна, при прокрутке назад — по её курсору
+    private void reloadPage(int pageToLoad) {
+        long gen = items.generation();
+        if (items.isResident(pageToLoad)) {
+            items.cancelPending(gen, pageToLoad);
+            return;
+        }
+        NewsService.PageCursor cursor = items.cursorOf(pageToLoad);
+        // Просим полную страницу: номер страницы в PageMergeEvent считается от pageSize,
+        // а лишнее у короткой последней страницы отрежет fillPage
+        CompletableFuture
+                .supplyAsync(() -> service.fetchPage(cursor, pageSize), io)
+                .whenComplete((result, error) -> Platform.runLater(() -> {
+                    if (error != null) {
+                        items.cancelPending(gen, pageToLoad);
+                        showStatus("Не удалось загрузить страницу " + (pageToLoad + 1));
+                        return;
+                    }
+                    UiApplyEvent applyEvent = new UiApplyEvent();
+                    applyEvent.begin();
+                    boolean matched = items.fillPage(gen, pageToLoad, result.articles());
+                    applyEvent.category = cursor.category();
+                    applyEvent.queryLength = cursor.query().length();
+                    applyEvent.page = pageToLoad;
+                    applyEvent.itemCount = result.articles().size();
+                    applyEvent.reload = true;
+                    applyEvent.commit();
+                    if (!matched && !loading) {
+                        // На старом месте теперь другие статьи — не подменяем их молча
+                        showStatus("Ленты обновились — список загружен заново");
+                        loadPage(true);
                     }
                 }));
     }
 
     @Override public void stop() {
         io.shutdownNow();
+        service.close();
+        recording.stop();
     }
 
     private void showStatus(String msg) {
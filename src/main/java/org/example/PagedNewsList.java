@@ -0,0 +1,201 @@
+package org.example;
+
+import javafx.collections.ObservableListBase;
+import org.example.service.NewsService.PageCursor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+/**
+ * Оконная модель списка для бесконечной прокрутки.
+ * Размер списка равен числу всех уже открытых новостей, но в памяти держится
+ * только ограниченное число страниц вокруг видимой области. Выгруженные
+ * страницы отдаются как {@code null} и подгружаются заново по курсору страницы.
+ * Видимую область сообщает UI через {@link #setViewport(int, int)}; {@link #get(int)} ничего не меняет.
+ */
+public class PagedNewsList extends ObservableListBase<NewsArticle> {
+    private final int pageSize;
+    private final int maxResidentPages;
+
+    // Курсор, длина и отпечаток каждой открытой страницы (несколько полей на страницу)
+    private final List<PageMeta> pages = new ArrayList<>();
+    // Страницы, которые сейчас в памяти: номер страницы -> статьи
+    private final Map<Integer, List<NewsArticle>> resident = new HashMap<>();
+    // Страницы, которые уже запрошены повторно
+    private final Set<Integer> pending = new HashSet<>();
+
+    private IntConsumer pageLoader = p -> {};
+    private int size = 0;
+    private int anchorPage = 0;
+    private long generation = 0;
+
+    public PagedNewsList(int pageSize, int maxResidentPages) {
+        if (pageSize <= 0) throw new IllegalArgumentException("pageSize must be > 0");
+        if (maxResidentPages < 2) throw new IllegalArgumentException("maxResidentPages must be >= 2");
+        this.pageSize = pageSize;
+        this.maxResidentPages = maxResidentPages;
+    }
+
+    /** Колбэк повторной загрузки выгруженной страницы; вызывается в FX-потоке. */
+    public void setPageLoader(IntConsumer pageLoader) {
+        this.pageLoader = pageLoader == null ? p -> {} : pageLoader;
+    }
+
+    @Override
+    public NewsArticle get(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+        int p = index / pageSize;
+        List<NewsArticle> articles = resident.get(p);
+        return articles == null ? null : articles.get(index - p * pageSize);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Сообщает, какие строки сейчас на экране: центр окна смещается к ним,
+     * а выгруженные страницы из этого диапазона запрашиваются заново.
+     */
+    public void setViewport(int firstIndex, int lastIndex) {
+        if (size == 0) return;
+        int first = Math.max(0, Math.min(firstIndex, size - 1));
+        int last = Math.max(first, Math.min(lastIndex, size - 1));
+        int firstPage = first / pageSize;
+        int lastPage = last / pageSize;
+        anchorPage = (firstPage + lastPage) / 2;
+        for (int p = firstPage; p <= lastPage; p++) {
+            if (!resident.containsKey(p) && pending.add(p)) pageLoader.accept(p);
+        }
+    }
+
+    /** Число открытых страниц. */
+    public int pageCount() {
+        return pages.size();
+    }
+
+    /** Поколение списка; меняется при сбросе, чтобы отбрасывать устаревшие ответы. */
+    public long generation() {
+        return generation;
+    }
+
+    public boolean isResident(int page) {
+        return resident.containsKey(page);
+    }
+
+    // Курсор — тип сервиса, который модуль не экспортирует, поэтому доступ только из пакета
+    PageCursor cursorOf(int page) {
+        return pages.get(page).cursor();
+    }
+
+    /**
+     * Добавляет следующую страницу в конец списка.
+     * @return {@code false}, если страница повторяет уже показанные статьи — выборка сместилась
+     */
+    boolean appendPage(List<NewsArticle> articles, PageCursor cursor) {
+        if (articles.isEmpty()) return true;
+        // Все страницы, кроме последней, должны быть полными — иначе сломается адресация по индексу
+        if (!pages.isEmpty() && pages.get(pages.size() - 1).length() < pageSize) return false;
+        Set<String> shown = new HashSet<>();
+        resident.values().forEach(list -> list.forEach(a -> shown.add(a.getUrl())));
+        for (NewsArticle a : articles) {
+            if (shown.contains(a.getUrl())) return false;
+        }
+
+        int p = pages.size();
+        List<NewsArticle> copy = List.copyOf(articles.size() > pageSize ? articles.subList(0, pageSize) : articles);
+        int from = size;
+        pages.add(new PageMeta(cursor, copy.size(), fingerprint(copy)));
+        resident.put(p, copy);
+        size += copy.size();
+
+        beginChange();
+        nextAdd(from, size);
+        evictFarPages();
+        endChange();
+        return true;
+    }
+
+    /**
+     * Возвращает в память ранее выгруженную страницу.
+     * @return {@code false}, если пришли не те статьи, что были на этом месте; страница остаётся выгруженной
+     */
+    public boolean fillPage(long gen, int p, List<NewsArticle> articles) {
+        pending.remove(p);
+        if (gen != generation || p < 0 || p >= pages.size() || resident.containsKey(p)) return true;
+        PageMeta meta = pages.get(p);
+        if (articles.size() < meta.length()) return false;
+        List<NewsArticle> copy = List.copyOf(articles.subList(0, meta.length()));
+        if (fingerprint(copy) != meta.fingerprint()) return false;
+        resident.put(p, copy);
+
+        int from = p * pageSize;
+        beginChange();
+        nextReplace(from, from + meta.length(), Collections.nCopies(meta.length(), null));
+        evictFarPages();
+        endChange();
+        return true;
+    }
+
+    /** Снимает отметку о запросе, чтобы страницу можно было запросить снова (например, после ошибки). */
+    public void cancelPending(long gen, int p) {
+        if (gen == generation) pending.remove(p);
+    }
+
+    @Override
+    public void clear() {
+        generation++;
+        pending.clear();
+        anchorPage = 0;
+        // Слушателям отдаём то, что было в памяти; выгруженные строки и так были null
+        List<NewsArticle> removed = new ArrayList<>(size);
+        for (int p = 0; p < pages.size(); p++) {
+            List<NewsArticle> articles = resident.get(p);
+            if (articles != null) removed.addAll(articles);
+            else removed.addAll(Collections.nCopies(pages.get(p).length(), null));
+        }
+        resident.clear();
+        pages.clear();
+        if (size == 0) return;
+        size = 0;
+        beginChange();
+        nextRemove(0, removed);
+        endChange();
+    }
+
+    // Выгружаем страницы, наиболее удалённые от видимой области
+    private void evictFarPages() {
+        while (resident.size() > maxResidentPages) {
+            int farthest = -1;
+            int maxDistance = -1;
+            for (int p : resident.keySet()) {
+                int d = Math.abs(p - anchorPage);
+                if (d > maxDistance) {
+                    maxDistance = d;
+                    farthest = p;
+                }
+            }
+            List<NewsArticle> removed = resident.remove(farthest);
+            int from = farthest * pageSize;
+            nextReplace(from, from + pages.get(farthest).length(), removed);
+        }
+    }
+
+    // Отпечаток страницы по ссылкам: сверяем повторно загруженную страницу с исходной
+    private static long fingerprint(List<NewsArticle> articles) {
+        long h = 1;
+        for (NewsArticle a : articles) {
+            h = 31 * h + (a.getUrl() == null ? 0 : a.getUrl().hashCode());
+        }
+        return h;
+    }
+
+    private record PageMeta(PageCursor cursor, int length, long fingerprint) {}
+}
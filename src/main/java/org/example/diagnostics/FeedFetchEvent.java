@@ -0,0 +1,32 @@
+package org.example.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/** HTTP-загрузка одной ленты. */
+@Name("org.example.FeedFetch")
+@Label("Feed Fetch")
+@Category({"NewsApp", "Feeds"})
+@Description("HTTP request for a single RSS/Atom feed")
+@Threshold("20 ms")
+@StackTrace(false)
+public class FeedFetchEvent extends Event {
+    @Label("Feed URL")
+    public String feedUrl;
+
+    @Label("HTTP Status")
+    public int status;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+
+    @Label("Success")
+    public boolean success;
+}
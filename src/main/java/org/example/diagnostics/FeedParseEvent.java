@@ -0,0 +1,32 @@
+package org.example.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/** Разбор XML одной ленты в записи. */
+@Name("org.example.FeedParse")
+@Label("Feed Parse")
+@Category({"NewsApp", "Feeds"})
+@Description("XML parsing of a downloaded feed into news records")
+@Threshold("5 ms")
+@StackTrace(false)
+public class FeedParseEvent extends Event {
+    @Label("Feed URL")
+    public String feedUrl;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+
+    @Label("Item Count")
+    public int itemCount;
+
+    @Label("Success")
+    public boolean success;
+}
@@ -0,0 +1,69 @@
+package org.example.diagnostics;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Кольцевая JFR-запись, которую можно включить из приложения и сбросить в файл по требованию.
+ * Наши события пишутся вместе со стандартным профилем JDK (GC, потоки, блокировки).
+ */
+public class FlightRecording {
+    private static final Duration MAX_AGE = Duration.ofMinutes(10);
+    private static final long MAX_SIZE = 64L * 1024 * 1024;
+    private static final DateTimeFormatter FILE_TS = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private Recording recording;
+
+    public static boolean isAvailable() {
+        return FlightRecorder.isAvailable();
+    }
+
+    public synchronized boolean isRunning() {
+        return recording != null;
+    }
+
+    public synchronized void start() throws IOException {
+        if (recording != null) return;
+        Recording r;
+        try {
+            r = new Recording(Configuration.getConfiguration("default"));
+        } catch (ParseException e) {
+            throw new IOException("Не удалось прочитать конфигурацию JFR", e);
+        }
+        r.setName("NewsApp");
+        r.setToDisk(true);
+        r.setMaxAge(MAX_AGE);
+        r.setMaxSize(MAX_SIZE);
+        // Пороги заданы аннотациями на событиях
+        r.enable(FeedFetchEvent.class);
+        r.enable(FeedParseEvent.class);
+        r.enable(PageMergeEvent.class);
+        r.enable(UiApplyEvent.class);
+        r.start();
+        recording = r;
+    }
+
+    /** Сохраняет накопленные данные в файл; запись продолжается. */
+    public synchronized Path dump(Path dir) throws IOException {
+        if (recording == null) throw new IllegalStateException("JFR-запись не запущена");
+        Files.createDirectories(dir);
+        Path file = dir.resolve("newsapp-" + LocalDateTime.now().format(FILE_TS) + ".jfr");
+        recording.dump(file);
+        return file;
+    }
+
+    public synchronized void stop() {
+        if (recording == null) return;
+        recording.close();
+        recording = null;
+    }
+}
@@ -0,0 +1,42 @@
+package org.example.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/** Фильтрация, сортировка, дедупликация и нарезка страницы из собранных лент. */
+@Name("org.example.PageMerge")
+@Label("Page Merge")
+@Category({"NewsApp", "Pages"})
+@Description("Filter, sort, de-duplicate and paginate aggregated feed records")
+@Threshold("5 ms")
+@StackTrace(false)
+public class PageMergeEvent extends Event {
+    @Label("Category")
+    public String category;
+
+    @Label("Query Length")
+    public int queryLength;
+
+    @Label("Page")
+    public int page;
+
+    @Label("Page Size")
+    public int pageSize;
+
+    @Label("Input Count")
+    @Description("Records aggregated from all feeds before filtering")
+    public int inputCount;
+
+    @Label("Item Count")
+    @Description("Articles in the resulting page")
+    public int itemCount;
+
+    @Label("Snapshot Reused")
+    @Description("Page was sliced from an already merged snapshot")
+    public boolean snapshotReused;
+}
@@ -0,0 +1,34 @@
+package org.example.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/** Применение загруженной страницы к списку в FX-потоке. */
+@Name("org.example.UiApply")
+@Label("UI Apply")
+@Category({"NewsApp", "UI"})
+@Description("Applying a loaded page to the list model on the FX application thread")
+@Threshold("2 ms")
+@StackTrace(false)
+public class UiApplyEvent extends Event {
+    @Label("Category")
+    public String category;
+
+    @Label("Query Length")
+    public int queryLength;
+
+    @Label("Page")
+    public int page;
+
+    @Label("Item Count")
+    public int itemCount;
+
+    @Label("Reload")
+    @Description("Page was evicted from the window and loaded again")
+    public boolean reload;
+}
@@ -0,0 +1,69 @@
+package org.example.service;
+
+/**
+ * Подписка на ленту и её сохраняемые метаданные.
+ * Изменяется только через {@link FeedRegistry} под его блокировкой; состояние обновления
+ * читается без блокировки из потоков планировщика и загрузки, поэтому эти поля volatile.
+ */
+public class FeedInfo {
+    private String url;
+    private volatile String title;
+    private volatile String category;
+    private volatile String htmlUrl;
+
+    // Состояние обновления
+    private volatile long lastFetchedAt;
+    private volatile long nextDueAt;
+    private volatile int lastStatus;
+    private volatile int failures;
+    private volatile int itemCount;
+    private volatile String etag;
+    private volatile String lastModified;
+
+    FeedInfo() {}
+
+    FeedInfo(String url, String title, String category, String htmlUrl) {
+        this.url = url;
+        this.title = title;
+        this.category = category;
+        this.htmlUrl = htmlUrl;
+    }
+
+    public String getUrl() { return url; }
+    public String getTitle() { return title; }
+    public String getCategory() { return category; }
+    public String getHtmlUrl() { return htmlUrl; }
+    public long getLastFetchedAt() { return lastFetchedAt; }
+    public long getNextDueAt() { return nextDueAt; }
+    public int getLastStatus() { return lastStatus; }
+    public int getFailures() { return failures; }
+    public int getItemCount() { return itemCount; }
+    public String getEtag() { return etag; }
+    public String getLastModified() { return lastModified; }
+
+    void setCategory(String category) { this.category = category; }
+    void setTitle(String title) { this.title = title; }
+    void setHtmlUrl(String htmlUrl) { this.htmlUrl = htmlUrl; }
+
+    void markFetched(long now, int status, int itemCount, String etag, String lastModified, long nextDueAt) {
+        this.lastFetchedAt = now;
+        this.lastStatus = status;
+        this.failures = 0;
+        if (status != 304) this.itemCount = itemCount;
+        if (etag != null) this.etag = etag;
+        if (lastModified != null) this.lastModified = lastModified;
+        this.nextDueAt = nextDueAt;
+    }
+
+    void markFailed(int status, long nextDueAt) {
+        this.lastStatus = status;
+        this.failures++;
+        this.nextDueAt = nextDueAt;
+    }
+
+    // Новости в памяти не переживают перезапуск — исправные ленты сразу снова к обновлению,
+    // а для сбойных сохраняем отсрочку
+    void resetSchedule() {
+        if (failures == 0) this.nextDueAt = 0;
+    }
+}
@@ -0,0 +1,228 @@
+package org.example.service;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Predicate;
+
+/**
+ * Фоновое обновление лент волнами. Все ленты раскладываются по шардам по хэшу URL;
+ * волны стартуют с фиксированным шагом {@code waveInterval}, каждая обходит один шард.
+ * Полный цикл равен {@code shards * waveInterval}, пока шард успевает уйти в сеть за один шаг
+ * (размер шарда / requestsPerSecond); дольше — волны идут подряд, и цикл растягивается.
+ * Все запросы — волны, приоритетные и синхронные — проходят через общий лимит частоты
+ * и пул соединений, а одна лента никогда не загружается дважды одновременно.
+ * Метаданные лент сохраняются на диск по таймеру {@code saveInterval}, а не после каждой волны.
+ */
+public class FeedRefreshScheduler implements AutoCloseable {
+    private static final int MAX_PRIORITY_BATCH = 200;
+
+    private final FeedRegistry registry;
+    private final Predicate<FeedInfo> refresher;
+    private final int shards;
+    private final Duration waveInterval;
+    private final Duration saveInterval;
+    private final RateLimiter limiter;
+
+    private final ScheduledExecutorService waves = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "feed-scheduler");
+        t.setDaemon(true);
+        return t;
+    });
+    // Приоритетные ленты не ждут текущую волну: свой поток, общий лимит
+    private final ExecutorService priorityRunner = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "feed-priority");
+        t.setDaemon(true);
+        return t;
+    });
+    private final ExecutorService workers;
+    // Приоритетные ленты (порядок сохраняется, дубликаты схлопываются)
+    private final Set<String> priority = new LinkedHashSet<>();
+    // Загрузки в процессе: url -> результат
+    private final Map<String, CompletableFuture<Boolean>> inFlight = new ConcurrentHashMap<>();
+
+    private volatile Runnable onWaveComplete = () -> {};
+    private int shard = 0;
+
+    /**
+     * @param refresher загружает ленту и возвращает {@code true}, если новости изменились
+     */
+    public FeedRefreshScheduler(FeedRegistry registry, Predicate<FeedInfo> refresher,
+                                int shards, Duration waveInterval, Duration saveInterval,
+                                double requestsPerSecond, int maxConcurrency) {
+        if (shards <= 0) throw new IllegalArgumentException("shards must be > 0");
+        this.registry = registry;
+        this.refresher = refresher;
+        this.shards = shards;
+        this.waveInterval = waveInterval;
+        this.saveInterval = saveInterval;
+        this.limiter = new RateLimiter(requestsPerSecond);
+        this.workers = Executors.newFixedThreadPool(maxConcurrency, r -> {
+            Thread t = new Thread(r, "feed-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Вызывается после волны, в которой что-то обновилось (в потоке загрузки). */
+    public void setOnWaveComplete(Runnable onWaveComplete) {
+        this.onWaveComplete = onWaveComplete == null ? () -> {} : onWaveComplete;
+    }
+
+    public void start() {
+        // Фиксированный шаг: ожидание ответов волны не сдвигает следующую
+        waves.scheduleAtFixedRate(this::runWave, 0, waveInterval.toMillis(), TimeUnit.MILLISECONDS);
+        waves.scheduleWithFixedDelay(this::saveRegistry,
+                saveInterval.toMillis(), saveInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /** Ставит ленты в начало очереди и запускает внеочередную волну только для них. */
+    public void prioritize(Collection<FeedInfo> feeds) {
+        synchronized (priority) {
+            for (FeedInfo f : feeds) {
+                if (priority.size() >= MAX_PRIORITY_BATCH) break;
+                priority.add(f.getUrl());
+            }
+        }
+        try {
+            priorityRunner.execute(() -> runBatch(drainPriority()));
+        } catch (RejectedExecutionException ignored) {
+            // Планировщик уже остановлен
+        }
+    }
+
+    /**
+     * Загружает ленты в текущем потоке с общим лимитом и ждёт результата.
+     * @return {@code true}, если новости хотя бы одной ленты изменились
+     */
+    public boolean refreshNow(Collection<FeedInfo> feeds) throws InterruptedException {
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>(feeds.size());
+        for (FeedInfo f : feeds) {
+            futures.add(submit(f));
+        }
+        boolean changed = false;
+        for (CompletableFuture<Boolean> future : futures) {
+            try {
+                changed |= Boolean.TRUE.equals(future.get());
+            } catch (ExecutionException | CancellationException e) {
+                // Ошибки отдельных лент учитываются в реестре
+            }
+        }
+        return changed;
+    }
+
+    private void runWave() {
+        try {
+            int current = shard;
+            shard = (shard + 1) % shards;
+            long now = System.currentTimeMillis();
+            List<FeedInfo> batch = new ArrayList<>();
+            for (FeedInfo f : registry.feedsFor(FeedRegistry.ALL)) {
+                if (Math.floorMod(f.getUrl().hashCode(), shards) == current && f.getNextDueAt() <= now) {
+                    batch.add(f);
+                }
+            }
+            runBatch(batch);
+        } catch (RuntimeException e) {
+            // Исключение отменило бы все следующие волны
+        }
+    }
+
+    private void saveRegistry() {
+        try {
+            registry.save();
+        } catch (Exception ignored) {
+            // Реестр остаётся изменённым — запишем при следующем сохранении
+        }
+    }
+
+    private List<FeedInfo> drainPriority() {
+        List<String> urls;
+        synchronized (priority) {
+            urls = new ArrayList<>(priority);
+            priority.clear();
+        }
+        List<FeedInfo> result = new ArrayList<>(urls.size());
+        for (String url : urls) {
+            FeedInfo f = registry.find(url);
+            if (f != null) result.add(f);
+        }
+        return result;
+    }
+
+    // Отправляет ленты с лимитом частоты; результаты собираются асинхронно, поток не ждёт ответов
+    private void runBatch(List<FeedInfo> batch) {
+        if (batch.isEmpty()) return;
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>(batch.size());
+        try {
+            for (FeedInfo f : batch) {
+                futures.add(submit(f));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (RejectedExecutionException e) {
+            return; // Остановка во время волны
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).whenComplete((ignored, error) -> {
+            boolean changed = futures.stream()
+                    .anyMatch(f -> !f.isCompletedExceptionally() && Boolean.TRUE.equals(f.getNow(false)));
+            if (changed) onWaveComplete.run();
+        });
+    }
+
+    // Одна загрузка на ленту: если лента уже грузится, возвращаем тот же результат
+    private CompletableFuture<Boolean> submit(FeedInfo f) throws InterruptedException {
+        String url = f.getUrl();
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        CompletableFuture<Boolean> existing = inFlight.putIfAbsent(url, future);
+        if (existing != null) return existing;
+        try {
+            limiter.acquire();
+            workers.execute(() -> {
+                try {
+                    future.complete(refresher.test(f));
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                } finally {
+                    inFlight.remove(url, future);
+                }
+            });
+        } catch (InterruptedException | RejectedExecutionException e) {
+            inFlight.remove(url, future);
+            future.cancel(false);
+            throw e;
+        }
+        return future;
+    }
+
+    @Override
+    public void close() {
+        waves.shutdownNow();
+        priorityRunner.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    // Равномерный лимит: не больше одного запроса за 1/rate секунды, общий для всех потоков
+    private static class RateLimiter {
+        private final long intervalNanos;
+        private long next = System.nanoTime();
+
+        RateLimiter(double perSecond) {
+            if (perSecond <= 0) throw new IllegalArgumentException("requestsPerSecond must be > 0");
+            this.intervalNanos = (long) (1_000_000_000L / perSecond);
+        }
+
+        void acquire() throws InterruptedException {
+            long wait;
+            // Слот резервируем под блокировкой, а спим уже без неё
+            synchronized (this) {
+                long now = System.nanoTime();
+                long slot = Math.max(now, next);
+                next = slot + intervalNanos;
+                wait = slot - now;
+            }
+            if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package org.example.service;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Реестр подписок: лента -> категория с индексом по категориям и сохранением метаданных на диск.
+ * Категории задаются пользователем (например, папками OPML); встроенные — только стартовый набор.
+ */
+public class FeedRegistry {
+    public static final String ALL = "all";
+    public static final String UNCATEGORIZED = "Без категории";
+
+    private static final Map<String, String> BUILTIN_LABELS = new LinkedHashMap<>();
+    private static final Map<String, String> ALIASES = new HashMap<>();
+    private static final Map<String, List<String>> DEFAULT_FEEDS = new LinkedHashMap<>();
+
+    static {
+        builtin("politics", "Политика", List.of(
+                "https://feeds.reuters.com/Reuters/PoliticsNews",
+                "https://feeds.bbci.co.uk/news/politics/rss.xml",
+                "http://rss.cnn.com/rss/cnn_allpolitics.rss"
+        ));
+        builtin("sports", "Спорт", List.of(
+                "https://feeds.reuters.com/reuters/sportsNews",
+                "https://feeds.bbci.co.uk/sport/rss.xml",
+                "http://rss.cnn.com/rss/edition_sport.rss",
+                "https://www.espn.com/espn/rss/news"
+        ));
+        builtin("technology", "Технологии", List.of(
+                "https://feeds.reuters.com/reuters/technologyNews",
+                "https://feeds.bbci.co.uk/news/technology/rss.xml",
+                "http://rss.cnn.com/rss/edition_technology.rss",
+                "https://techcrunch.com/feed/",
+                "https://www.wired.com/feed/"
+        ));
+        builtin("science", "Наука", List.of(
+                "https://feeds.reuters.com/reuters/scienceNews",
+                "https://feeds.bbci.co.uk/news/science_and_environment/rss.xml",
+                "https://www.sciencedaily.com/rss/all.xml",
+                "https://www.nature.com/nature.rss",
+                "https://feeds.feedburner.com/oreilly/radar"
+        ));
+        builtin("business", "Бизнес", List.of(
+                "https://feeds.reuters.com/reuters/businessNews",
+                "https://feeds.bbci.co.uk/news/business/rss.xml",
+                "http://rss.cnn.com/rss/money_latest.rss",
+                "https://feeds.bloomberg.com/markets/news.rss",
+                "https://www.ft.com/rss/home"
+        ));
+        builtin("health", "Здоровье", List.of(
+                "https://feeds.reuters.com/reuters/health",
+                "https://feeds.bbci.co.uk/news/health/rss.xml",
+                "http://rss.cnn.com/rss/cnn_health.rss",
+                "https://www.medicalnewstoday.com/rss",
+                "https://www.healthline.com/rss"
+        ));
+        ALIASES.put("все", ALL);
+        ALIASES.put(ALL, ALL);
+    }
+
+    private static void builtin(String id, String label, List<String> feeds) {
+        BUILTIN_LABELS.put(id, label);
+        ALIASES.put(id, id);
+        ALIASES.put(label.toLowerCase(Locale.ROOT), id);
+        DEFAULT_FEEDS.put(id, feeds);
+    }
+
+    private final Gson gson = new Gson();
+    private final Path file;
+    // Сохранения идут по очереди, но не под блокировкой реестра
+    private final Object saveLock = new Object();
+
+    // Индексы: url -> лента, id категории -> ленты, id категории -> отображаемое имя
+    private final Map<String, FeedInfo> byUrl = new LinkedHashMap<>();
+    private final Map<String, Set<FeedInfo>> byCategory = new HashMap<>();
+    private final Map<String, String> labels = new HashMap<>();
+    private boolean dirty = false;
+    // Файл реестра не прочитался: работаем на стартовом наборе и не пишем на диск,
+    // пока пользователь сам не изменит подписки
+    private boolean fallback = false;
+
+    private FeedRegistry(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Загружает реестр из файла; если файла нет или он повреждён — стартовый набор лент.
+     * Повреждённый файл сохраняется рядом с расширением {@code .bak}.
+     */
+    public static FeedRegistry load(Path file) {
+        FeedRegistry registry = new FeedRegistry(file);
+        if (file != null && Files.isRegularFile(file)) {
+            try (Reader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                Stored stored = registry.gson.fromJson(r, Stored.class);
+                if (stored != null && stored.feeds != null) {
+                    for (FeedInfo f : stored.feeds) {
+                        if (f == null || f.getUrl() == null || f.getUrl().isBlank()) continue;
+                        f.resetSchedule();
+                        registry.put(f);
+                    }
+                }
+            } catch (IOException | JsonParseException e) {
+                // Повреждённый файл не должен ломать запуск — начнём со стартового набора,
+                // но подписки пользователя не затираем
+                registry.byUrl.clear();
+                registry.byCategory.clear();
+                registry.labels.clear();
+                registry.fallback = true;
+                try {
+                    Files.move(file, file.resolveSibling(file.getFileName() + ".bak"),
+                            StandardCopyOption.REPLACE_EXISTING);
+                } catch (IOException ignored) {
+                    // Не смогли отложить копию — тем более не пишем поверх
+                }
+            }
+        }
+        if (registry.byUrl.isEmpty()) {
+            DEFAULT_FEEDS.forEach((id, urls) -> urls.forEach(u ->
+                    registry.put(new FeedInfo(u, null, BUILTIN_LABELS.get(id), null))));
+            registry.dirty = !registry.fallback;
+        }
+        return registry;
+    }
+
+    /** Нормализует отображаемое имя категории в её id; неизвестные категории — это «все». */
+    public synchronized String categoryId(String category) {
+        if (category == null || category.isBlank()) return ALL;
+        String c = category.trim().toLowerCase(Locale.ROOT);
+        String alias = ALIASES.get(c);
+        if (alias != null) return alias;
+        return byCategory.containsKey(c) ? c : ALL;
+    }
+
+    /** Имена категорий для выбора в UI: сначала встроенные, затем пользовательские по алфавиту. */
+    public synchronized List<String> categoryLabels() {
+        List<String> result = new ArrayList<>();
+        BUILTIN_LABELS.forEach((id, label) -> {
+            if (byCategory.containsKey(id)) result.add(label);
+        });
+        List<String> custom = new ArrayList<>();
+        labels.forEach((id, label) -> {
+            if (!BUILTIN_LABELS.containsKey(id) && byCategory.containsKey(id)) custom.add(label);
+        });
+        custom.sort(String.CASE_INSENSITIVE_ORDER);
+        result.addAll(custom);
+        return result;
+    }
+
+    public synchronized List<FeedInfo> feedsFor(String categoryId) {
+        if (ALL.equals(categoryId)) return List.copyOf(byUrl.values());
+        return List.copyOf(byCategory.getOrDefault(categoryId, Set.of()));
+    }
+
+    public synchronized FeedInfo find(String url) {
+        return byUrl.get(url);
+    }
+
+    public synchronized int size() {
+        return byUrl.size();
+    }
+
+    /**
+     * Импортирует подписки из OPML. Категория ленты — ближайшая родительская папка
+     * (outline без xmlUrl), иначе атрибут category. Повторный импорт обновляет категорию и название.
+     * @return число новых лент
+     */
+    public int importOpml(Path opml) throws Exception {
+        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        dbf.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        dbf.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+        dbf.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+        dbf.setAttribute(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+        Document doc;
+        try (var in = Files.newInputStream(opml)) {
+            doc = dbf.newDocumentBuilder().parse(in);
+        }
+        NodeList bodies = doc.getElementsByTagName("body");
+        if (bodies.getLength() == 0) throw new IllegalArgumentException("Не найден элемент body в OPML");
+
+        List<FeedInfo> parsed = new ArrayList<>();
+        collectOutlines((Element) bodies.item(0), null, parsed);
+
+        int added = 0;
+        synchronized (this) {
+            for (FeedInfo f : parsed) {
+                FeedInfo existing = byUrl.get(f.getUrl());
+                if (existing == null) {
+                    put(f);
+                    added++;
+                } else {
+                    unindex(existing);
+                    existing.setCategory(f.getCategory());
+                    if (f.getTitle() != null) existing.setTitle(f.getTitle());
+                    if (f.getHtmlUrl() != null) existing.setHtmlUrl(f.getHtmlUrl());
+                    index(existing);
+                }
+            }
+            if (!parsed.isEmpty()) {
+                dirty = true;
+                fallback = false;
+            }
+        }
+        return added;
+    }
+
+    private void collectOutlines(Element parent, String folder, List<FeedInfo> out) {
+        NodeList children = parent.getChildNodes();
+        for (int i = 0; i < children.getLength(); i++) {
+            Node n = children.item(i);
+            if (n.getNodeType() != Node.ELEMENT_NODE || !"outline".equalsIgnoreCase(n.getNodeName())) continue;
+            Element o = (Element) n;
+            String text = attr(o, "title") != null ? attr(o, "title") : attr(o, "text");
+            String xmlUrl = attr(o, "xmlUrl");
+            if (xmlUrl != null) {
+                String category = folder;
+                if (category == null) category = firstCategory(attr(o, "category"));
+                if (category == null) category = UNCATEGORIZED;
+                out.add(new FeedInfo(xmlUrl.trim(), text, category, attr(o, "htmlUrl")));
+            } else {
+                collectOutlines(o, text != null ? text : folder, out);
+            }
+        }
+    }
+
+    // В OPML 2.0 category — список путей через запятую, например "/Tech/AI,/News"
+    private static String firstCategory(String category) {
+        if (category == null) return null;
+        String first = category.split(",")[0].trim();
+        while (first.startsWith("/")) first = first.substring(1);
+        int slash = first.indexOf('/');
+        if (slash > 0) first = first.substring(0, slash);
+        return first.isBlank() ? null : first;
+    }
+
+    private static String attr(Element e, String name) {
+        String v = e.getAttribute(name);
+        return v == null || v.isBlank() ? null : v.trim();
+    }
+
+    synchronized void recordSuccess(FeedInfo feed, int status, int itemCount, String etag, String lastModified, long nextDueAt) {
+        feed.markFetched(System.currentTimeMillis(), status, itemCount, etag, lastModified, nextDueAt);
+        dirty = true;
+    }
+
+    synchronized void recordFailure(FeedInfo feed, int status, long nextDueAt) {
+        feed.markFailed(status, nextDueAt);
+        dirty = true;
+    }
+
+    /**
+     * Сохраняет реестр, если он менялся; пишет во временный файл и атомарно подменяет.
+     * Под блокировкой реестра только копируется список лент: запись на диск не держит
+     * ни потоки обновления, ни загрузку страниц.
+     */
+    public void save() throws IOException {
+        synchronized (saveLock) {
+            Stored stored = new Stored();
+            synchronized (this) {
+                if (!dirty || fallback || file == null) return;
+                stored.feeds = new ArrayList<>(byUrl.values());
+                dirty = false;
+            }
+            try {
+                Path dir = file.toAbsolutePath().getParent();
+                if (dir != null) Files.createDirectories(dir);
+                Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+                try (Writer w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                    gson.toJson(stored, w);
+                }
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException | RuntimeException e) {
+                // Изменения не записались — сохраним их в следующий раз
+                synchronized (this) {
+                    dirty = true;
+                }
+                throw e;
+            }
+        }
+    }
+
+    private void put(FeedInfo f) {
+        if (f.getCategory() == null || f.getCategory().isBlank()) f.setCategory(UNCATEGORIZED);
+        FeedInfo previous = byUrl.put(f.getUrl(), f);
+        if (previous != null) unindex(previous);
+        index(f);
+    }
+
+    private void index(FeedInfo f) {
+        String label = f.getCategory().trim();
+        String id = idOf(label);
+        labels.putIfAbsent(id, BUILTIN_LABELS.getOrDefault(id, label));
+        byCategory.computeIfAbsent(id, k -> new LinkedHashSet<>()).add(f);
+    }
+
+    private void unindex(FeedInfo f) {
+        String id = idOf(f.getCategory());
+        Set<FeedInfo> set = byCategory.get(id);
+        if (set == null) return;
+        set.remove(f);
+        if (set.isEmpty()) {
+            byCategory.remove(id);
+            labels.remove(id);
+        }
+    }
+
+    private static String idOf(String label) {
+        String c = label.trim().toLowerCase(Locale.ROOT);
+        return ALIASES.getOrDefault(c, c);
+    }
+
+    private static class Stored {
+        int version = 1;
+        List<FeedInfo> feeds;
+    }
+}
@@ -2,6 +2,9 @@
 package org.example.service;
 
 import org.example.NewsArticle;
+import org.example.diagnostics.FeedFetchEvent;
+import org.example.diagnostics.FeedParseEvent;
+import org.example.diagnostics.PageMergeEvent;
 
 import java.io.ByteArrayInputStream;
 import java.net.URI;
@@ -10,6 +13,7 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.OffsetDateTime;
@@ -18,6 +22,7 @@ import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 import javax.xml.parsers.DocumentBuilder;
@@ -26,128 +31,153 @@ import javax.xml.XMLConstants;
 
 import org.w3c.dom.*;
 
-public class NewsService {
-    private static final List<String> POLITICS_FEEDS = List.of(
-            "https://feeds.reuters.com/Reuters/PoliticsNews",
-            "https://feeds.bbci.co.uk/news/politics/rss.xml",
-            "http://rss.cnn.com/rss/cnn_allpolitics.rss"
-    );
-
-    private static final List<String> SPORTS_FEEDS = List.of(
-            "https://feeds.reuters.com/reuters/sportsNews",
-            "https://feeds.bbci.co.uk/sport/rss.xml",
-            "http://rss.cnn.com/rss/edition_sport.rss",
-            "https://www.espn.com/espn/rss/news"
-    );
-
-    private static final List<String> TECHNOLOGY_FEEDS = List.of(
-            "https://feeds.reuters.com/reuters/technologyNews",
-            "https://feeds.bbci.co.uk/news/technology/rss.xml",
-            "http://rss.cnn.com/rss/edition_technology.rss",
-            "https://techcrunch.com/feed/",
-            "https://www.wired.com/feed/"
-    );
-
-    private static final List<String> SCIENCE_FEEDS = List.of(
-            "https://feeds.reuters.com/reuters/scienceNews",
-            "https://feeds.bbci.co.uk/news/science_and_environment/rss.xml",
-            "https://www.sciencedaily.com/rss/all.xml",
-            "https://www.nature.com/nature.rss",
-            "https://feeds.feedburner.com/oreilly/radar"
-    );
-
-    private static final List<String> BUSINESS_FEEDS = List.of(
-            "https://feeds.reuters.com/reuters/businessNews",
-            "https://feeds.bbci.co.uk/news/business/rss.xml",
-            "http://rss.cnn.com/rss/money_latest.rss",
-            "https://feeds.bloomberg.com/markets/news.rss",
-            "https://www.ft.com/rss/home"
-    );
-
-    private static final List<String> HEALTH_FEEDS = List.of(
-            "https://feeds.reuters.com/reuters/health",
-            "https://feeds.bbci.co.uk/news/health/rss.xml",
-            "http://rss.cnn.com/rss/cnn_health.rss",
-            "https://www.medicalnewstoday.com/rss",
-            "https://www.healthline.com/rss"
-    );
+public class NewsService implements AutoCloseable {
+    // Полный цикл обновления = SHARDS * WAVE_INTERVAL = 15 минут, пока шард уходит в сеть за одну волну:
+    // при REQUESTS_PER_SECOND это до SHARDS * WAVE_INTERVAL * 10 = 9000 лент; больше — цикл растягивается
+    private static final Duration REFRESH_INTERVAL = Duration.ofMinutes(15);
+    private static final Duration WAVE_INTERVAL = Duration.ofSeconds(15);
+    private static final int SHARDS = (int) (REFRESH_INTERVAL.toMillis() / WAVE_INTERVAL.toMillis());
+    private static final double REQUESTS_PER_SECOND = 10;
+    private static final int MAX_CONCURRENT_FETCHES = 8;
+    private static final Duration MAX_BACKOFF = Duration.ofHours(6);
+    // Реестр на тысячи лент пишем на диск раз в несколько минут; ещё — при импорте и закрытии
+    private static final Duration SAVE_INTERVAL = Duration.ofMinutes(5);
+
+    // Сколько последних новостей храним на ленту
+    private static final int MAX_ITEMS_PER_FEED = 50;
+    // Описание храним уже очищенным от HTML и обрезанным — сырые тела лент в памяти не держим
+    private static final int MAX_SUMMARY_CHARS = 500;
+    // Категории не больше этого догружаем прямо в запросе, как раньше; большие — только через планировщик
+    private static final int SYNC_FETCH_LIMIT = 64;
+    // Сколько собранных выборок (категория + запрос) держим в кэше
+    private static final int MAX_SNAPSHOTS = 8;
+
+    private static final Comparator<NewsRecord> NEWEST_FIRST = (a, b) -> {
+        Instant ia = a.instant == null ? Instant.EPOCH : a.instant;
+        Instant ib = b.instant == null ? Instant.EPOCH : b.instant;
+        return ib.compareTo(ia);
+    };
 
     private final HttpClient client = HttpClient.newBuilder()
             .connectTimeout(Duration.ofSeconds(10))
             .build();
 
-    // Кэш страниц: ключ = category|query|pageSize|page
-    private final Map<String, PageResult> cache = new ConcurrentHashMap<>();
+    private final FeedRegistry registry;
+    private final FeedRefreshScheduler scheduler;
 
-    public PageResult fetchPage(String category, String query, int page, int pageSize) {
-        String cat = normalizeCategory(category);
+    // Последние новости каждой ленты (url -> записи, новые первыми) и версия всего хранилища
+    private final Map<String, List<NewsRecord>> itemsByFeed = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong();
+
+    // Кэш выборок (LRU): ключ = category|query. Страницы нарезаются из одной выборки,
+    // поэтому повторная загрузка выгруженной страницы возвращает то же самое
+    private final Map<String, Snapshot> snapshots = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Snapshot> eldest) {
+                    return size() > MAX_SNAPSHOTS;
+                }
+            });
+
+    public NewsService() {
+        this(FeedRegistry.load(Path.of(System.getProperty("user.home"), ".newsapp", "feeds.json")));
+    }
+
+    public NewsService(FeedRegistry registry) {
+        this.registry = registry;
+        this.scheduler = new FeedRefreshScheduler(registry, this::refreshFeed,
+                SHARDS, WAVE_INTERVAL, SAVE_INTERVAL, REQUESTS_PER_SECOND, MAX_CONCURRENT_FETCHES);
+    }
+
+    /** Запускает фоновое обновление лент. */
+    public void start() {
+        scheduler.start();
+    }
+
+    /** Вызывается из фонового потока, когда волна обновления принесла новые новости. */
+    public void setOnFeedsUpdated(Runnable listener) {
+        scheduler.setOnWaveComplete(listener);
+    }
+
+    public List<String> categoryLabels() {
+        return registry.categoryLabels();
+    }
+
+    public int feedCount() {
+        return registry.size();
+    }
+
+    /** Импортирует OPML и сохраняет реестр; возвращает число новых лент. */
+    public int importOpml(Path opml) throws Exception {
+        int added = registry.importOpml(opml);
+        registry.save();
+        snapshots.clear();
+        return added;
+    }
+
+    /** Отбрасывает выборки, собранные до последнего обновления лент (при сбросе списка). */
+    public void dropStaleSnapshots() {
+        long v = version.get();
+        synchronized (snapshots) {
+            snapshots.values().removeIf(s -> s.version() != v);
+        }
+    }
+
+    /** Первая страница выборки для категории и запроса. */
+    public PageResult fetchPage(String category, String query, int pageSize) {
+        String cat = registry.categoryId(category);
         String q = query == null ? "" : query.trim();
-        String key = cat + "|" + q.toLowerCase(Locale.ROOT) + "|" + pageSize + "|" + page;
-        PageResult cached = cache.get(key);
-        if (cached != null) return cached;
-
-        List<String> feeds = switch (cat) {
-            case "politics" -> POLITICS_FEEDS;
-            case "sports" -> SPORTS_FEEDS;
-            case "technology" -> TECHNOLOGY_FEEDS;
-            case "science" -> SCIENCE_FEEDS;
-            case "business" -> BUSINESS_FEEDS;
-            case "health" -> HEALTH_FEEDS;
-            default -> {
-                List<String> all = new ArrayList<>();
-                all.addAll(POLITICS_FEEDS);
-                all.addAll(SPORTS_FEEDS);
-                all.addAll(TECHNOLOGY_FEEDS);
-                all.addAll(SCIENCE_FEEDS);
-                all.addAll(BUSINESS_FEEDS);
-                all.addAll(HEALTH_FEEDS);
-                yield all;
-            }
-        };
+        return fetchPage(cat, q, null, pageSize);
+    }
 
-        // Загружаем и парсим все ленты
-        List<NewsRecord> aggregated = new ArrayList<>();
-        for (String url : feeds) {
-            try {
-                aggregated.addAll(fetchFeed(url));
-            } catch (Exception e) {
-                // Игнорируем частичные сбои, продолжаем с остальными лентами
-            }
+    /**
+     * Страница по курсору — следующая ({@link PageResult#next()}) или ранее показанная.
+     * Если выборка с версией курсора ещё та же, страница совпадает байт в байт;
+     * иначе позиция ищется по ссылке, а затем по дате публикации первой статьи.
+     */
+    public PageResult fetchPage(PageCursor cursor, int pageSize) {
+        return fetchPage(cursor.category(), cursor.query(), cursor, pageSize);
+    }
+
+    private PageResult fetchPage(String cat, String q, PageCursor cursor, int pageSize) {
+        String key = cat + "|" + q.toLowerCase(Locale.ROOT);
+
+        Snapshot snapshot = snapshots.get(key);
+        List<FeedInfo> feeds = null;
+        if (snapshot == null) {
+            feeds = registry.feedsFor(cat);
+            // Догружаем ленты только для первой страницы; по курсору отдаём то, что уже есть.
+            // Сеть — до начала события: её учитывают FeedFetch/FeedParse
+            if (cursor == null) ensureLoaded(feeds);
         }
 
-        // Фильтрация по запросу
-        if (!q.isBlank()) {
-            String ql = q.toLowerCase(Locale.ROOT);
-            aggregated = aggregated.stream()
-                    .filter(n -> (n.title != null && n.title.toLowerCase(Locale.ROOT).contains(ql))
-                            || (n.summary != null && n.summary.toLowerCase(Locale.ROOT).contains(ql)))
-                    .collect(Collectors.toList());
+        PageMergeEvent mergeEvent = new PageMergeEvent();
+        mergeEvent.begin();
+        mergeEvent.snapshotReused = snapshot != null;
+        if (snapshot == null) {
+            snapshot = buildSnapshot(feeds, q);
+            snapshots.put(key, snapshot);
         }
+        List<NewsRecord> records = snapshot.records();
 
-        // Сортировка по дате (новые первыми)
-        aggregated.sort((a, b) -> {
-            Instant ia = a.instant == null ? Instant.EPOCH : a.instant;
-            Instant ib = b.instant == null ? Instant.EPOCH : b.instant;
-            return ib.compareTo(ia);
-        });
-
-        // Пагинация
-        int offset = page * pageSize;
+        // Пагинация по курсору
+        int offset = cursor == null ? 0 : locate(snapshot, cursor);
         List<NewsRecord> pageSlice;
-        boolean hasNext;
-        if (offset >= aggregated.size()) {
+        PageCursor pageCursor = null;
+        PageCursor next = null;
+        if (offset >= records.size()) {
             pageSlice = List.of();
-            hasNext = false;
         } else {
-            int to = Math.min(offset + pageSize, aggregated.size());
-            pageSlice = aggregated.subList(offset, to);
-            hasNext = to < aggregated.size();
+            int to = Math.min(offset + pageSize, records.size());
+            pageSlice = records.subList(offset, to);
+            pageCursor = cursorAt(cat, q, snapshot, offset);
+            if (to < records.size()) next = cursorAt(cat, q, snapshot, to);
         }
 
         List<NewsArticle> articles = pageSlice.stream()
                 .map(n -> new NewsArticle(
                         orEmpty(n.title),
-                        stripHtml(orEmpty(n.summary)),
+                        orEmpty(n.summary),
                         orEmpty(n.link),
                         orEmpty(n.source),
                         n.publishedAt == null ? "" : n.publishedAt,
@@ -155,37 +185,183 @@ public class NewsService {
                 ))
                 .collect(Collectors.toList());
 
-        PageResult result = new PageResult(articles, hasNext);
-        cache.put(key, result);
-        return result;
+        mergeEvent.category = cat;
+        mergeEvent.queryLength = q.length();
+        mergeEvent.page = offset / pageSize;
+        mergeEvent.pageSize = pageSize;
+        mergeEvent.inputCount = snapshot.inputCount();
+        mergeEvent.itemCount = articles.size();
+        mergeEvent.commit();
+
+        return new PageResult(cat, articles, pageCursor, next);
+    }
+
+    private static PageCursor cursorAt(String cat, String q, Snapshot snapshot, int offset) {
+        NewsRecord r = snapshot.records().get(offset);
+        return new PageCursor(cat, q, snapshot.version(), offset, r.link, instantOf(r).toEpochMilli());
     }
 
-    private String normalizeCategory(String category) {
-        if (category == null) return "all";
-        String c = category.trim().toLowerCase(Locale.ROOT);
-        return switch (c) {
-            case "политика", "politics" -> "politics";
-            case "спорт", "sports" -> "sports";
-            case "технологии", "technology" -> "technology";
-            case "наука", "science" -> "science";
-            case "бизнес", "business" -> "business";
-            case "здоровье", "health" -> "health";
-            default -> "all";
-        };
+    // Позиция курсора в выборке: по смещению, если версия совпала, иначе по ссылке или дате
+    private static int locate(Snapshot snapshot, PageCursor cursor) {
+        List<NewsRecord> records = snapshot.records();
+        if (cursor.version() >= 0 && cursor.version() == snapshot.version()) return cursor.offset();
+        for (int i = 0; i < records.size(); i++) {
+            if (cursor.link().equals(records.get(i).link)) return i;
+        }
+        // Статью вытеснили из хранилища — продолжаем с первой не новее неё
+        for (int i = 0; i < records.size(); i++) {
+            if (instantOf(records.get(i)).toEpochMilli() <= cursor.publishedAt()) return i;
+        }
+        return records.size();
     }
 
-    private List<NewsRecord> fetchFeed(String url) throws Exception {
-        HttpRequest req = HttpRequest.newBuilder(URI.create(url))
+    private static Instant instantOf(NewsRecord r) {
+        return r.instant == null ? Instant.EPOCH : r.instant;
+    }
+
+    // Ленты без данных: маленькую категорию догружаем сразу, большую отдаём планировщику
+    private void ensureLoaded(List<FeedInfo> feeds) {
+        long now = System.currentTimeMillis();
+        List<FeedInfo> missing = feeds.stream()
+                .filter(f -> !itemsByFeed.containsKey(f.getUrl()) && f.getNextDueAt() <= now)
+                .collect(Collectors.toList());
+        if (missing.isEmpty()) return;
+        if (feeds.size() <= SYNC_FETCH_LIMIT) {
+            // Через планировщик: общий лимит частоты и без двойной загрузки одной ленты
+            try {
+                scheduler.refreshNow(missing);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        } else {
+            scheduler.prioritize(missing);
+        }
+    }
+
+    private Snapshot buildSnapshot(List<FeedInfo> feeds, String q) {
+        long before = version.get();
+        List<NewsRecord> aggregated = new ArrayList<>();
+        for (FeedInfo f : feeds) {
+            List<NewsRecord> items = itemsByFeed.get(f.getUrl());
+            if (items != null) aggregated.addAll(items);
+        }
+        int inputCount = aggregated.size();
+
+        // Фильтрация по запросу
+        if (!q.isBlank()) {
+            String ql = q.toLowerCase(Locale.ROOT);
+            aggregated = aggregated.stream()
+                    .filter(n -> (n.title != null && n.title.toLowerCase(Locale.ROOT).contains(ql))
+                            || (n.summary != null && n.summary.toLowerCase(Locale.ROOT).contains(ql)))
+                    .collect(Collectors.toList());
+        }
+
+        // Сортировка по дате (новые первыми)
+        aggregated.sort(NEWEST_FIRST);
+
+        // Дедупликация по ссылке до пагинации: страницы не пересекаются,
+        // и клиенту не нужно помнить все уже показанные ссылки
+        Set<String> seenLinks = new HashSet<>();
+        aggregated = aggregated.stream()
+                .filter(n -> n.link != null && !n.link.isBlank() && seenLinks.add(n.link))
+                .collect(Collectors.toList());
+
+        // Ленты обновились во время сборки — такую выборку не воспроизвести, смещения курсоров к ней не применимы
+        long v = version.get() == before ? before : -1;
+        return new Snapshot(aggregated, v, inputCount);
+    }
+
+    /** Обновляет одну ленту; возвращает {@code true}, если её новости изменились. */
+    boolean refreshFeed(FeedInfo feed) {
+        long now = System.currentTimeMillis();
+        try {
+            // Условный GET имеет смысл, только если новости ленты уже есть в памяти
+            FeedResponse res = fetchFeed(feed, itemsByFeed.containsKey(feed.getUrl()));
+            long nextDue = now + REFRESH_INTERVAL.toMillis();
+            if (res.status() == 304) {
+                registry.recordSuccess(feed, 304, 0, res.etag(), res.lastModified(), nextDue);
+                return false;
+            }
+            List<NewsRecord> records = new ArrayList<>(res.records());
+            records.sort(NEWEST_FIRST);
+            if (records.size() > MAX_ITEMS_PER_FEED) records = records.subList(0, MAX_ITEMS_PER_FEED);
+            itemsByFeed.put(feed.getUrl(), records.stream()
+                    .map(n -> new NewsRecord(n.title, shortSummary(n.summary), n.link, n.source, n.publishedAt, n.instant))
+                    .collect(Collectors.toUnmodifiableList()));
+            version.incrementAndGet();
+            registry.recordSuccess(feed, res.status(), records.size(), res.etag(), res.lastModified(), nextDue);
+            return true;
+        } catch (InterruptedException e) {
+            // Остановка приложения — это не сбой ленты, отсрочку не назначаем
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            if (Thread.currentThread().isInterrupted()) return false;
+            int status = e instanceof HttpStatusException h ? h.status : 0;
+            // Экспоненциальная отсрочка для сбойных лент
+            long backoff = REFRESH_INTERVAL.toMillis() << Math.min(feed.getFailures(), 5);
+            registry.recordFailure(feed, status, now + Math.min(backoff, MAX_BACKOFF.toMillis()));
+            return false;
+        }
+    }
+
+    private static String shortSummary(String summary) {
+        String text = stripHtml(orEmpty(summary));
+        return text.length() <= MAX_SUMMARY_CHARS ? text : text.substring(0, MAX_SUMMARY_CHARS).trim() + "…";
+    }
+
+    @Override
+    public void close() {
+        scheduler.close();
+        try {
+            registry.save();
+        } catch (Exception ignored) {}
+    }
+
+    private FeedResponse fetchFeed(FeedInfo feed, boolean conditional) throws Exception {
+        String url = feed.getUrl();
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
                 .timeout(Duration.ofSeconds(15))
                 .header("User-Agent", "NewsApp/1.0 (+https://localhost)")
                 .header("Accept", "application/rss+xml, application/xml;q=0.9, */*;q=0.8")
-                .GET()
-                .build();
-        HttpResponse<byte[]> res = client.send(req, HttpResponse.BodyHandlers.ofByteArray());
-        if (res.statusCode() != 200) throw new RuntimeException("HTTP " + res.statusCode());
+                .GET();
+        if (conditional && feed.getEtag() != null) builder.header("If-None-Match", feed.getEtag());
+        if (conditional && feed.getLastModified() != null) builder.header("If-Modified-Since", feed.getLastModified());
+        HttpRequest req = builder.build();
+        FeedFetchEvent fetchEvent = new FeedFetchEvent();
+        fetchEvent.begin();
+        fetchEvent.feedUrl = url;
+        HttpResponse<byte[]> res;
+        try {
+            res = client.send(req, HttpResponse.BodyHandlers.ofByteArray());
+            fetchEvent.status = res.statusCode();
+            fetchEvent.bytes = res.body() == null ? 0 : res.body().length;
+            fetchEvent.success = res.statusCode() == 200 || res.statusCode() == 304;
+        } finally {
+            fetchEvent.commit();
+        }
+        String etag = res.headers().firstValue("ETag").orElse(null);
+        String lastModified = res.headers().firstValue("Last-Modified").orElse(null);
+        if (res.statusCode() == 304) return new FeedResponse(304, List.of(), etag, lastModified);
+        if (res.statusCode() != 200) throw new HttpStatusException(res.statusCode());
 
         byte[] body = res.body();
+        FeedParseEvent parseEvent = new FeedParseEvent();
+        parseEvent.begin();
+        parseEvent.feedUrl = url;
+        parseEvent.bytes = body.length;
+        List<NewsRecord> list;
+        try {
+            list = parseFeed(url, body);
+            parseEvent.itemCount = list.size();
+            parseEvent.success = true;
+        } finally {
+            parseEvent.commit();
+        }
+        return new FeedResponse(200, list, etag, lastModified);
+    }
 
+    private List<NewsRecord> parseFeed(String url, byte[] body) throws Exception {
         DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
         dbf.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
         dbf.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
@@ -345,7 +521,28 @@ public class NewsService {
         return noTags.replaceAll("\n{3,}", "\n\n").trim();
     }
 
-    public record PageResult(List<NewsArticle> articles, boolean hasNext) {}
+    /**
+     * Устойчивая позиция страницы: версия выборки и смещение в ней,
+     * плюс ссылка и дата первой статьи — чтобы найти место, если выборка пересобрана.
+     */
+    public record PageCursor(String category, String query, long version, int offset, String link, long publishedAt) {}
+
+    /** Страница выборки; {@code category} — id категории в реестре, а не отображаемое имя. */
+    public record PageResult(String category, List<NewsArticle> articles, PageCursor cursor, PageCursor next) {
+        public boolean hasNext() { return next != null; }
+    }
+
+    private record Snapshot(List<NewsRecord> records, long version, int inputCount) {}
+
+    private record FeedResponse(int status, List<NewsRecord> records, String etag, String lastModified) {}
+
+    private static class HttpStatusException extends RuntimeException {
+        final int status;
+        HttpStatusException(int status) {
+            super("HTTP " + status);
+            this.status = status;
+        }
+    }
 
     private static class NewsRecord {
         final String title;